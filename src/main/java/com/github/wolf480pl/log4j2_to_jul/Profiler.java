@@ -0,0 +1,377 @@
+/*
+ * This file is part of Log4j2 to JUL, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Wolf480pl <wolf480@interia.pl/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.wolf480pl.log4j2_to_jul;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Samples calls going through {@link com.github.wolf480pl.log4j2_to_jul.context.JULLogger JULLogger} and {@link com.github.wolf480pl.log4j2_to_jul.appender.JULAppender JULAppender}, and measures how much time and memory each Log4j2 logger spends formatting messages, constructing {@link java.util.logging.LogRecord LogRecords}, and dispatching them to {@link java.util.logging.Handler Handlers}.
+ * <p>
+ * Profiling is disabled by default. It's configured with the following system properties:
+ * <ul>
+ * <li>{@value #SAMPLE_RATE_PROPERTY} - sample 1 in N calls, 0 (the default) disables profiling</li>
+ * <li>{@value #MAX_LOGGERS_PROPERTY} - how many logger names to track at once, 1000 by default; when a new name shows up and all of them are taken, the lightest one is evicted (the space-saving algorithm), so the heaviest loggers are kept even if they show up late</li>
+ * <li>{@value #REPORT_INTERVAL_PROPERTY} - if positive, every that many seconds a report of the {@value #REPORT_SIZE} heaviest loggers is logged to the {@link java.util.logging.Logger} named after this class</li>
+ * </ul>
+ * If profiling is enabled at startup, a {@link ProfilerMBean} is also registered as {@value #OBJECT_NAME}.
+ * <p>
+ * Allocated bytes are only measured if the JVM supports {@code com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long)}.
+ */
+public final class Profiler {
+    public static final String SAMPLE_RATE_PROPERTY = "log4j2-to-jul.profile.sampleRate";
+    public static final String MAX_LOGGERS_PROPERTY = "log4j2-to-jul.profile.maxLoggers";
+    public static final String REPORT_INTERVAL_PROPERTY = "log4j2-to-jul.profile.reportInterval";
+    public static final String OBJECT_NAME = "com.github.wolf480pl.log4j2_to_jul:type=Profiler";
+    public static final int REPORT_SIZE = 20;
+
+    /**
+     * The phases in which the time and memory are measured.
+     */
+    public static enum Phase {
+        /**
+         * Formatting the message.
+         */
+        FORMAT,
+        /**
+         * Constructing the {@link java.util.logging.LogRecord}.
+         */
+        RECORD,
+        /**
+         * Passing the record to {@link java.util.logging.Logger}.
+         */
+        DISPATCH
+    }
+
+    private static final int PHASES = Phase.values().length;
+    // Layout of the stats arrays: samples, nanos per phase, bytes per phase, nanos inherited from evicted entries
+    private static final int SAMPLES = 0;
+    private static final int NANOS = 1;
+    private static final int BYTES = NANOS + PHASES;
+    private static final int INHERITED = BYTES + PHASES;
+    private static final int STATS_SIZE = INHERITED + 1;
+    private static final ConcurrentMap<String, AtomicLongArray> STATS = new ConcurrentHashMap<>();
+    private static final int MAX_LOGGERS = Math.max(1, Integer.getInteger(MAX_LOGGERS_PROPERTY, 1000));
+    private static volatile int sampleRate = Integer.getInteger(SAMPLE_RATE_PROPERTY, 0);
+    private static volatile boolean allocationsUnavailable;
+    private static final ThreadLocal<Boolean> SUPPRESSED = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+    static {
+        if (sampleRate > 0) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(new Management(), ProfilerMBean.class), new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                Logger.getLogger(Profiler.class.getName()).log(Level.WARNING, "Unable to register the profiler MBean", e);
+            }
+            long interval = Long.getLong(REPORT_INTERVAL_PROPERTY, 0) * 1000;
+            if (interval > 0) {
+                new Timer(Profiler.class.getSimpleName(), true).schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        Logger logger = Logger.getLogger(Profiler.class.getName());
+                        try {
+                            logger.info(report(REPORT_SIZE));
+                        } catch (RuntimeException e) {
+                            logger.log(Level.WARNING, "Unable to produce the profiler report", e);
+                        }
+                    }
+                }, interval, interval);
+            }
+        }
+    }
+
+    private Profiler() {
+    }
+
+    /**
+     * Returns how often calls are sampled.
+     * 
+     * @return N if 1 in N calls is sampled, or 0 if profiling is disabled
+     */
+    public static int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets how often calls are sampled.
+     * 
+     * @param rate N to sample 1 in N calls, or 0 to disable profiling
+     */
+    public static void setSampleRate(int rate) {
+        sampleRate = Math.max(0, rate);
+    }
+
+    /**
+     * Decides whether to sample the current call.
+     * 
+     * @param loggerName name of the Log4j2 logger the call is made through
+     * @return a {@link Sample} to record the phases of the call in, or null if the call isn't sampled
+     */
+    public static Sample sample(String loggerName) {
+        int rate = sampleRate;
+        if (rate <= 0 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) || SUPPRESSED.get()) {
+            return null;
+        }
+        return new Sample(loggerName);
+    }
+
+    /**
+     * Returns whether sampling is suppressed for the current thread.
+     * 
+     * @return true if calls made by the current thread are never sampled
+     */
+    public static boolean isSuppressed() {
+        return SUPPRESSED.get();
+    }
+
+    /**
+     * Suppresses sampling of the calls made by the current thread, or lets them be sampled again. Used by {@link com.github.wolf480pl.log4j2_to_jul.context.JULContextFactory#warmUp(String, java.util.Collection) warm-up}, so that its synthetic calls don't show up in the statistics.
+     * 
+     * @param suppressed true to suppress sampling, false to allow it
+     */
+    public static void setSuppressed(boolean suppressed) {
+        SUPPRESSED.set(suppressed);
+    }
+
+    /**
+     * Returns a report of the loggers which took the most time, with the average time and allocated bytes of each phase per call.
+     * <p>
+     * A logger that replaced an evicted one is ranked as if it had also taken the time of the evicted one, which is shown as the possible overestimation of its total.
+     * 
+     * @param count how many loggers to include
+     * @return the report
+     */
+    public static String report(int count) {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>();
+        for (Map.Entry<String, AtomicLongArray> entry : STATS.entrySet()) {
+            long[] snapshot = snapshot(entry.getValue());
+            if (snapshot[SAMPLES] > 0) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), snapshot));
+            }
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                return Long.compare(weight(b.getValue()), weight(a.getValue()));
+            }
+        });
+        StringBuilder report = new StringBuilder("Heaviest loggers (sampling 1 in ").append(sampleRate).append(" calls; average ns / bytes per call):");
+        for (Map.Entry<String, long[]> entry : entries.subList(0, Math.min(count, entries.size()))) {
+            long[] stats = entry.getValue();
+            long samples = stats[SAMPLES];
+            report.append(System.lineSeparator()).append(entry.getKey()).append(": ").append(samples).append(" samples");
+            for (Phase phase : Phase.values()) {
+                report.append(", ").append(phase.name().toLowerCase(Locale.ROOT)).append(' ')
+                        .append(stats[NANOS + phase.ordinal()] / samples).append(" ns / ")
+                        .append(stats[BYTES + phase.ordinal()] / samples).append(" B");
+            }
+            if (stats[INHERITED] > 0) {
+                report.append(", total overestimated by up to ").append(stats[INHERITED]).append(" ns");
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Discards all the collected samples.
+     */
+    public static void reset() {
+        STATS.clear();
+    }
+
+    private static long[] snapshot(AtomicLongArray stats) {
+        long[] snapshot = new long[stats.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = stats.get(i);
+        }
+        return snapshot;
+    }
+
+    private static long weight(long[] stats) {
+        long total = stats[INHERITED];
+        for (int i = 0; i < PHASES; i++) {
+            total += stats[NANOS + i];
+        }
+        return total;
+    }
+
+    private static long allocatedBytes() {
+        if (allocationsUnavailable) {
+            return 0;
+        }
+        try {
+            return Allocations.current();
+        } catch (LinkageError e) {
+            allocationsUnavailable = true;
+            return 0;
+        }
+    }
+
+    private static void add(String loggerName, long[] sample) {
+        AtomicLongArray stats = STATS.get(loggerName);
+        if (stats == null) {
+            // Publish the new entry with the sample already counted, so that it's never seen empty
+            AtomicLongArray fresh = new AtomicLongArray(sample);
+            // New names are rare, so they're all inserted under the lock to keep the map within MAX_LOGGERS
+            synchronized (STATS) {
+                stats = STATS.get(loggerName);
+                if (stats == null) {
+                    while (STATS.size() >= MAX_LOGGERS) {
+                        if (!evictLightest(fresh)) {
+                            break;
+                        }
+                    }
+                    STATS.put(loggerName, fresh);
+                    return;
+                }
+            }
+        }
+        for (int i = 0; i < sample.length; i++) {
+            stats.addAndGet(i, sample[i]);
+        }
+    }
+
+    /**
+     * Evicts the lightest entry and makes the replacing entry inherit its weight, as in the space-saving algorithm.
+     */
+    private static boolean evictLightest(AtomicLongArray replacement) {
+        Map.Entry<String, AtomicLongArray> lightest = null;
+        long lightestWeight = Long.MAX_VALUE;
+        for (Map.Entry<String, AtomicLongArray> entry : STATS.entrySet()) {
+            long weight = weight(snapshot(entry.getValue()));
+            if (weight < lightestWeight) {
+                lightest = entry;
+                lightestWeight = weight;
+            }
+        }
+        if (lightest != null && STATS.remove(lightest.getKey(), lightest.getValue())) {
+            replacement.addAndGet(INHERITED, lightestWeight);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the non-standard {@code com.sun.management} API out of {@link Profiler} itself, so that it's only linked when profiling is enabled.
+     */
+    private static final class Allocations {
+        private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+        private static com.sun.management.ThreadMXBean threads() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+                return (com.sun.management.ThreadMXBean) threads;
+            }
+            return null;
+        }
+
+        static long current() {
+            return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    /**
+     * Measures the phases of a single sampled call.
+     */
+    public static final class Sample {
+        private final String loggerName;
+        private final long[] stats = new long[STATS_SIZE];
+        private long lastNanos;
+        private long lastBytes;
+
+        private Sample(String loggerName) {
+            this.loggerName = loggerName;
+            this.lastBytes = allocatedBytes();
+            this.lastNanos = System.nanoTime();
+        }
+
+        /**
+         * Marks the end of a phase. The time and memory since the previous mark (or since the sample was taken) is attributed to that phase.
+         * 
+         * @param phase the phase that has just ended
+         */
+        public void mark(Phase phase) {
+            long now = System.nanoTime();
+            long allocated = allocatedBytes();
+            this.stats[NANOS + phase.ordinal()] += now - this.lastNanos;
+            this.stats[BYTES + phase.ordinal()] += allocated - this.lastBytes;
+            this.lastBytes = allocatedBytes();
+            this.lastNanos = System.nanoTime();
+        }
+
+        /**
+         * Adds this sample to the statistics of its logger.
+         */
+        public void done() {
+            this.stats[SAMPLES] = 1;
+            add(this.loggerName, this.stats);
+        }
+    }
+
+    private static class Management implements ProfilerMBean {
+        @Override
+        public int getSampleRate() {
+            return Profiler.getSampleRate();
+        }
+
+        @Override
+        public void setSampleRate(int sampleRate) {
+            Profiler.setSampleRate(sampleRate);
+        }
+
+        @Override
+        public String report(int count) {
+            return Profiler.report(count);
+        }
+
+        @Override
+        public void reset() {
+            Profiler.reset();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of Log4j2 to JUL, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Wolf480pl <wolf480@interia.pl/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.wolf480pl.log4j2_to_jul;
+
+/**
+ * The JMX interface of the {@link Profiler}, registered as {@value Profiler#OBJECT_NAME} when profiling is enabled at startup.
+ */
+public interface ProfilerMBean {
+
+    /**
+     * Returns how often calls are sampled.
+     * 
+     * @return N if 1 in N calls is sampled, or 0 if profiling is disabled
+     */
+    int getSampleRate();
+
+    /**
+     * Sets how often calls are sampled.
+     * 
+     * @param sampleRate N to sample 1 in N calls, or 0 to disable profiling
+     */
+    void setSampleRate(int sampleRate);
+
+    /**
+     * Returns a report of the loggers which took the most time.
+     * 
+     * @param count how many loggers to include
+     * @return the report
+     */
+    String report(int count);
+
+    /**
+     * Discards all the collected samples.
+     */
+    void reset();
+}
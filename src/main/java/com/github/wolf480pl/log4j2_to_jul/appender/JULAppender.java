@@ -40,6 +40,7 @@ import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.apache.logging.log4j.spi.AbstractLogger;
 import org.apache.logging.log4j.status.StatusLogger;
 
+import com.github.wolf480pl.log4j2_to_jul.Profiler;
 import com.github.wolf480pl.log4j2_to_jul.Util;
 
 /**
@@ -50,19 +51,28 @@ public final class JULAppender extends AbstractAppender {
     protected static final Logger LOGGER = StatusLogger.getLogger();
     protected static final String DEFAULT_FCQN = AbstractLogger.class.getName();
     protected static final String DEFAULT_PATTERN = "%m%rEx{0}";
+    protected static final int DEFAULT_SPILL_SIZE = 4 * 1024 * 1024;
+    protected static final long DEFAULT_SPILL_THRESHOLD = 100;
 
     private final JULManager manager;
+    private final JULSpillManager spill;
 
-    private JULAppender(String name, Layout<? extends Serializable> layout, Filter filter, JULManager manager, boolean ignoreExceptions) {
+    private JULAppender(String name, Layout<? extends Serializable> layout, Filter filter, JULManager manager, JULSpillManager spill, boolean ignoreExceptions) {
         super(name, filter, layout, ignoreExceptions);
         this.manager = manager;
+        this.spill = spill;
     }
 
     /**
      * Logs the event by redirecting its contents to the {@link java.util.logging.Logger} configured in this appender.
+     * <p>
+     * If a spill file is configured and the {@link java.util.logging.Handler Handlers} are falling behind, the event is written to the spill file instead, and redirected later in the background.
+     * <p>
+     * If profiling is enabled, the call may be sampled by the {@link Profiler}.
      */
     @Override
     public void append(LogEvent event) {
+        Profiler.Sample sample = Profiler.sample(event.getLoggerName());
         Level level = Util.levelToJUL(event.getLevel());
         String message;
         Serializable ser = getLayout().toSerializable(event);
@@ -72,6 +82,9 @@ public final class JULAppender extends AbstractAppender {
             byte[] bytes = getLayout().toByteArray(event);
             message = new String(bytes);
         }
+        if (sample != null) {
+            sample.mark(Profiler.Phase.FORMAT);
+        }
         LogRecord record = new LogRecord(level, message);
         java.util.logging.Logger jul = this.manager.getJUL();
         record.setThrown(event.getThrown());
@@ -88,7 +101,39 @@ public final class JULAppender extends AbstractAppender {
         } else if (!event.getFQCN().equals(DEFAULT_FCQN)) {
             record.setSourceClassName(event.getFQCN());
         }
-        jul.log(record);
+        if (sample != null) {
+            sample.mark(Profiler.Phase.RECORD);
+        }
+        dispatch(jul, record);
+        if (sample != null) {
+            sample.mark(Profiler.Phase.DISPATCH);
+            sample.done();
+        }
+    }
+
+    private void dispatch(java.util.logging.Logger jul, LogRecord record) {
+        if (this.spill == null) {
+            jul.log(record);
+            return;
+        }
+        if (this.spill.offer(jul, record)) {
+            return;
+        }
+        long start = System.nanoTime();
+        this.spill.dispatching(start);
+        try {
+            jul.log(record);
+        } finally {
+            this.spill.dispatched(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (this.spill != null) {
+            this.spill.release();
+        }
     }
 
     /**
@@ -99,12 +144,16 @@ public final class JULAppender extends AbstractAppender {
      * @param ignore if true, no exceptions from this appender will be propagated to the application; if false, then undefined (and is a subject to change when new features are added)
      * @param layout the layout to use to format the message field of {@link java.util.logging.LogRecord}
      * @param filter the filter to associate with this appender
+     * @param spillFile path of the memory-mapped file to which log events are written while the {@link java.util.logging.Handler Handlers} are falling behind; if null, log events are always redirected synchronously
+     * @param spillSize size of the spill file in bytes, 4 MiB by default; ignored if the file already exists
+     * @param spillThreshold how long (in milliseconds) redirecting a log event may take before subsequent events are written to the spill file, 100 ms by default
      * @return
      */
     @PluginFactory
     public static JULAppender createAppender(@PluginAttribute("name") String name, @PluginAttribute("logger") String logger, @PluginAttribute("ignoreExceptions") String ignore,
             @PluginElement("Layout") Layout<? extends Serializable> layout,
-            @PluginElement("Filters") Filter filter) {
+            @PluginElement("Filters") Filter filter,
+            @PluginAttribute("spillFile") String spillFile, @PluginAttribute("spillSize") String spillSize, @PluginAttribute("spillThreshold") String spillThreshold) {
         boolean ignoreExceptions = Boolean.parseBoolean(ignore);
         if (name == null) {
             LOGGER.error("No name provided for JULAppender");
@@ -120,7 +169,31 @@ public final class JULAppender extends AbstractAppender {
         if (layout == null) {
             layout = PatternLayout.createLayout(DEFAULT_PATTERN, null, null, null, null);
         }
-        return new JULAppender(name, layout, filter, manager, ignoreExceptions);
+        JULSpillManager spill = null;
+        if (spillFile != null) {
+            int size = DEFAULT_SPILL_SIZE;
+            long threshold = DEFAULT_SPILL_THRESHOLD;
+            try {
+                if (spillSize != null) {
+                    size = Integer.parseInt(spillSize);
+                }
+                if (spillThreshold != null) {
+                    threshold = Long.parseLong(spillThreshold);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.error("Invalid spillSize or spillThreshold for JULAppender " + name);
+                return null;
+            }
+            if (size <= 1024 || threshold < 0) {
+                LOGGER.error("spillSize must be greater than 1024 and spillThreshold must not be negative for JULAppender " + name);
+                return null;
+            }
+            spill = JULSpillManager.getSpillManager(spillFile, size, threshold);
+            if (spill == null) {
+                return null;
+            }
+        }
+        return new JULAppender(name, layout, filter, manager, spill, ignoreExceptions);
     }
 
 }
\ No newline at end of file
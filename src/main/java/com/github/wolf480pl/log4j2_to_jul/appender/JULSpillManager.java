@@ -0,0 +1,517 @@
+/*
+ * This file is part of Log4j2 to JUL, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Wolf480pl <wolf480@interia.pl/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.wolf480pl.log4j2_to_jul.appender;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.appender.AbstractManager;
+import org.apache.logging.log4j.core.appender.ManagerFactory;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * A memory-mapped ring file used by {@link JULAppender} to hold log records while the {@link java.util.logging.Handler Handlers} are falling behind.
+ * <p>
+ * Once a direct dispatch to JUL has been running for longer than the configured threshold, records are serialized into the file instead, and a background thread replays them in order. Records that were not replayed before a crash are replayed the next time the file is opened.
+ * <p>
+ * While there's nothing to replay, the background thread checks the dispatches in progress every quarter of the threshold (but at most once per millisecond), so that logging threads don't have to.
+ */
+public class JULSpillManager extends AbstractManager {
+    private static final Logger LOGGER = StatusLogger.getLogger();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x4A554C53; // "JULS"
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int LENGTH_OFFSET = 8;
+    private static final int READ_POS_OFFSET = 16;
+    private static final int WRITE_POS_OFFSET = 24;
+    private static final int HEADER_SIZE = 32;
+    private static final long JOIN_TIMEOUT = 5000;
+    private static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final ByteBuffer writeBuf;
+    private final ByteBuffer readBuf;
+    private final int capacity;
+    private final long thresholdNanos;
+    private final long waitNanos;
+    private final Thread reader;
+    private final CopyOnWriteArrayList<DispatchSlot> slots = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<DispatchSlot> slot = new ThreadLocal<DispatchSlot>() {
+        @Override
+        protected DispatchSlot initialValue() {
+            DispatchSlot slot = new DispatchSlot(Thread.currentThread());
+            JULSpillManager.this.slots.add(slot);
+            return slot;
+        }
+    };
+    private long readPos;
+    private long writePos;
+    private long dropped;
+    private volatile boolean empty;
+    private volatile boolean congested;
+    private boolean running = true;
+    private boolean closed;
+
+    protected JULSpillManager(String name, RandomAccessFile file, MappedByteBuffer map, long thresholdNanos) {
+        super(name);
+        this.file = file;
+        this.map = map;
+        this.writeBuf = map.duplicate();
+        this.readBuf = map.duplicate();
+        this.capacity = map.capacity() - HEADER_SIZE;
+        this.thresholdNanos = thresholdNanos;
+        this.waitNanos = Math.max(thresholdNanos, MIN_WAIT_NANOS);
+        this.readPos = map.getLong(READ_POS_OFFSET);
+        this.writePos = map.getLong(WRITE_POS_OFFSET);
+        if (this.readPos < 0 || this.writePos < this.readPos || this.writePos - this.readPos > this.capacity) {
+            LOGGER.warn("Spill file " + name + " has invalid read/write positions, discarding its records");
+            this.readPos = 0;
+            this.writePos = 0;
+            writeHeader();
+        } else if (this.writePos != this.readPos) {
+            LOGGER.info("Replaying " + (this.writePos - this.readPos) + " bytes of records left in spill file " + name);
+        }
+        this.empty = this.readPos == this.writePos;
+        this.reader = new Thread(new Replayer(), "JULSpill-" + name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Spills the record into the file if the direct dispatch is congested, or if there are records that haven't been replayed yet.
+     * <p>
+     * Blocks while the file is full, but for no longer than the threshold (or 1 ms if the threshold is shorter). If there's still no room by then, the record is dropped and reported to the status logger.
+     * 
+     * @param target the {@link java.util.logging.Logger} to which the record should be replayed
+     * @param record the record
+     * @return true if the record was spilled or dropped, false if the caller should log it directly
+     */
+    public boolean offer(java.util.logging.Logger target, LogRecord record) {
+        if (!this.congested && this.empty) {
+            return false;
+        }
+        byte[] bytes;
+        try {
+            bytes = encode(target, record);
+        } catch (IOException e) {
+            LOGGER.error("Unable to serialize a record for spill file " + getName(), e);
+            return false;
+        }
+        synchronized (this) {
+            long deadline = System.nanoTime() + this.waitNanos;
+            try {
+                if (bytes.length > this.capacity) {
+                    // Too big to ever fit, so wait until everything before it is replayed
+                    while (this.running && this.readPos != this.writePos) {
+                        if (!await(deadline)) {
+                            return drop();
+                        }
+                    }
+                    return false;
+                }
+                while (this.running && this.capacity - (this.writePos - this.readPos) < bytes.length) {
+                    if (!await(deadline)) {
+                        return drop();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (!this.running) {
+                return false;
+            }
+            put(this.writeBuf, this.writePos, bytes);
+            this.writePos += bytes.length;
+            this.empty = false;
+            writeHeader();
+            notifyAll();
+            return true;
+        }
+    }
+
+    private boolean await(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        return true;
+    }
+
+    private boolean drop() {
+        this.dropped++;
+        if (this.dropped == 1 || this.dropped % 1000 == 0) {
+            LOGGER.error("Spill file " + getName() + " is full, dropped " + this.dropped + " records so far");
+        }
+        return true;
+    }
+
+    /**
+     * Registers a direct dispatch by the current thread that is about to start, so that records start to be spilled if it stalls.
+     * 
+     * @param start the value of {@link System#nanoTime()} at the start of the dispatch
+     */
+    public void dispatching(long start) {
+        DispatchSlot slot = this.slot.get();
+        if (slot.depth++ == 0) {
+            slot.start = start == 0 ? 1 : start;
+        }
+    }
+
+    /**
+     * Reports that the direct dispatch by the current thread has ended. If it took longer than the threshold, subsequent records will be spilled.
+     * 
+     * @param nanos the duration of the dispatch, in nanoseconds
+     */
+    public void dispatched(long nanos) {
+        DispatchSlot slot = this.slot.get();
+        if (--slot.depth == 0) {
+            slot.start = 0;
+        }
+        if (nanos > this.thresholdNanos) {
+            this.congested = true;
+        }
+    }
+
+    private boolean isStalled() {
+        long now = System.nanoTime();
+        boolean stalled = false;
+        for (DispatchSlot slot : this.slots) {
+            long start = slot.start;
+            if (start != 0 && now - start > this.thresholdNanos) {
+                stalled = true;
+            }
+            Thread owner = slot.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                this.slots.remove(slot);
+            }
+        }
+        return stalled;
+    }
+
+    @Override
+    protected void releaseSub() {
+        synchronized (this) {
+            this.running = false;
+            notifyAll();
+        }
+        try {
+            this.reader.join(JOIN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            // If the replayer is still stuck in a handler, the records it hasn't finished stay in the file for the next run
+            this.closed = true;
+            this.map.force();
+        }
+        try {
+            this.file.close();
+        } catch (IOException e) {
+            LOGGER.error("Unable to close spill file " + getName(), e);
+        }
+    }
+
+    private void writeHeader() {
+        this.map.putLong(READ_POS_OFFSET, this.readPos);
+        this.map.putLong(WRITE_POS_OFFSET, this.writePos);
+    }
+
+    private void put(ByteBuffer buf, long pos, byte[] src) {
+        int offset = (int) (pos % this.capacity);
+        int first = Math.min(src.length, this.capacity - offset);
+        buf.position(HEADER_SIZE + offset);
+        buf.put(src, 0, first);
+        if (first < src.length) {
+            buf.position(HEADER_SIZE);
+            buf.put(src, first, src.length - first);
+        }
+    }
+
+    private void get(ByteBuffer buf, long pos, byte[] dst) {
+        int offset = (int) (pos % this.capacity);
+        int first = Math.min(dst.length, this.capacity - offset);
+        buf.position(HEADER_SIZE + offset);
+        buf.get(dst, 0, first);
+        if (first < dst.length) {
+            buf.position(HEADER_SIZE);
+            buf.get(dst, first, dst.length - first);
+        }
+    }
+
+    private static byte[] encode(java.util.logging.Logger target, LogRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length, filled in below
+        out.writeInt(record.getLevel().intValue());
+        out.writeLong(record.getMillis());
+        out.writeLong(record.getSequenceNumber());
+        out.writeInt(record.getThreadID());
+        writeString(out, target.getName());
+        writeString(out, record.getLoggerName());
+        writeString(out, record.getSourceClassName());
+        writeString(out, record.getSourceMethodName());
+        writeString(out, record.getMessage());
+        writeString(out, record.getThrown() == null ? null : record.getThrown().toString());
+        out.flush();
+        byte[] result = bytes.toByteArray();
+        ByteBuffer.wrap(result).putInt(0, result.length);
+        return result;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private class Replayer implements Runnable {
+        @Override
+        public void run() {
+            byte[] lenBytes = new byte[4];
+            while (true) {
+                long pos;
+                long end;
+                synchronized (JULSpillManager.this) {
+                    try {
+                        long watchMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(JULSpillManager.this.thresholdNanos) / 4);
+                        while (JULSpillManager.this.running && JULSpillManager.this.readPos == JULSpillManager.this.writePos) {
+                            JULSpillManager.this.wait(watchMillis);
+                            if (JULSpillManager.this.readPos == JULSpillManager.this.writePos && isStalled()) {
+                                JULSpillManager.this.congested = true;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (JULSpillManager.this.closed || JULSpillManager.this.readPos == JULSpillManager.this.writePos) {
+                        return;
+                    }
+                    pos = JULSpillManager.this.readPos;
+                    end = JULSpillManager.this.writePos;
+                }
+                long next;
+                long elapsed = 0;
+                get(JULSpillManager.this.readBuf, pos, lenBytes);
+                int len = ByteBuffer.wrap(lenBytes).getInt();
+                if (len <= lenBytes.length || len > end - pos) {
+                    LOGGER.error("Corrupted record in spill file " + getName() + ", discarding the remaining records");
+                    next = end;
+                } else {
+                    byte[] data = new byte[len];
+                    get(JULSpillManager.this.readBuf, pos, data);
+                    next = pos + len;
+                    try {
+                        long start = System.nanoTime();
+                        replay(data);
+                        elapsed = System.nanoTime() - start;
+                    } catch (IOException e) {
+                        LOGGER.error("Unable to read a record from spill file " + getName(), e);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to replay a record from spill file " + getName(), e);
+                    }
+                }
+                synchronized (JULSpillManager.this) {
+                    if (JULSpillManager.this.closed) {
+                        return;
+                    }
+                    JULSpillManager.this.readPos = next;
+                    JULSpillManager.this.empty = next == JULSpillManager.this.writePos;
+                    JULSpillManager.this.congested = elapsed > JULSpillManager.this.thresholdNanos;
+                    writeHeader();
+                    JULSpillManager.this.notifyAll();
+                }
+            }
+        }
+
+        private void replay(byte[] data) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            in.readInt();
+            Level level = Level.parse(Integer.toString(in.readInt()));
+            long millis = in.readLong();
+            long sequenceNumber = in.readLong();
+            int threadID = in.readInt();
+            String target = readString(in);
+            LogRecord record = new LogRecord(level, null);
+            record.setMillis(millis);
+            record.setSequenceNumber(sequenceNumber);
+            record.setThreadID(threadID);
+            record.setLoggerName(readString(in));
+            record.setSourceClassName(readString(in));
+            record.setSourceMethodName(readString(in));
+            record.setMessage(readString(in));
+            String thrown = readString(in);
+            if (thrown != null) {
+                record.setThrown(new SpilledThrowable(thrown));
+            }
+            java.util.logging.Logger.getLogger(target).log(record);
+        }
+    }
+
+    /**
+     * The state of the direct dispatch of one thread. Only the owner thread writes to it.
+     */
+    private static final class DispatchSlot {
+        // Padding, so that the slots of different threads don't share a cache line
+        @SuppressWarnings("unused")
+        private long p1, p2, p3, p4, p5, p6, p7;
+        /**
+         * Start time of the dispatch in progress, 0 if there's none.
+         */
+        private volatile long start;
+        @SuppressWarnings("unused")
+        private long q1, q2, q3, q4, q5, q6, q7;
+        private final WeakReference<Thread> owner;
+        private int depth;
+
+        public DispatchSlot(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+    }
+
+    /**
+     * Stands in for the original {@link Throwable} of a replayed record. Only its {@link Throwable#toString() summary} is preserved.
+     */
+    private static class SpilledThrowable extends Throwable {
+        private static final long serialVersionUID = 1L;
+        private final String summary;
+
+        public SpilledThrowable(String summary) {
+            super(summary, null, false, false);
+            this.summary = summary;
+        }
+
+        @Override
+        public String toString() {
+            return this.summary;
+        }
+    }
+
+    /**
+     * Returns the spill manager for the given file, creating it if needed.
+     * <p>
+     * An existing file is only accepted if it is a spill file created by this class; its size is kept as is.
+     * 
+     * @param fileName path of the spill file
+     * @param size size of the file in bytes, ignored if the file already exists
+     * @param thresholdMillis dispatch time (in milliseconds) above which records start to be spilled
+     * @return the manager, or null if the file couldn't be opened or is not a spill file
+     */
+    public static JULSpillManager getSpillManager(String fileName, int size, long thresholdMillis) {
+        JULSpillManager manager = getManager(fileName, FACTORY, new FactoryData(size, thresholdMillis));
+        if (manager != null && manager.thresholdNanos != TimeUnit.MILLISECONDS.toNanos(thresholdMillis)) {
+            LOGGER.warn("Spill file " + fileName + " is already used with a threshold of " + TimeUnit.NANOSECONDS.toMillis(manager.thresholdNanos) + " ms, ignoring the threshold of " + thresholdMillis + " ms");
+        }
+        return manager;
+    }
+
+    private static JULSpillManagerFactory FACTORY = new JULSpillManagerFactory();
+
+    private static class FactoryData {
+        private final int size;
+        private final long thresholdMillis;
+
+        public FactoryData(int size, long thresholdMillis) {
+            this.size = size;
+            this.thresholdMillis = thresholdMillis;
+        }
+    }
+
+    private static class JULSpillManagerFactory implements ManagerFactory<JULSpillManager, FactoryData> {
+        @Override
+        public JULSpillManager createManager(String name, FactoryData data) {
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(name, "rw");
+                long length = file.length();
+                MappedByteBuffer map;
+                if (length == 0) {
+                    map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, data.size);
+                    map.putInt(MAGIC_OFFSET, MAGIC);
+                    map.putInt(VERSION_OFFSET, VERSION);
+                    map.putLong(LENGTH_OFFSET, data.size);
+                } else {
+                    if (length <= HEADER_SIZE || length > Integer.MAX_VALUE) {
+                        LOGGER.error(name + " is not a spill file");
+                        file.close();
+                        return null;
+                    }
+                    map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+                    if (map.getInt(MAGIC_OFFSET) != MAGIC || map.getLong(LENGTH_OFFSET) != length) {
+                        LOGGER.error(name + " is not a spill file");
+                        file.close();
+                        return null;
+                    }
+                    if (map.getInt(VERSION_OFFSET) != VERSION) {
+                        LOGGER.error("Spill file " + name + " has unsupported version " + map.getInt(VERSION_OFFSET));
+                        file.close();
+                        return null;
+                    }
+                }
+                return new JULSpillManager(name, file, map, TimeUnit.MILLISECONDS.toNanos(data.thresholdMillis));
+            } catch (IOException e) {
+                LOGGER.error("Unable to open spill file " + name, e);
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                return null;
+            }
+        }
+    }
+}
@@ -23,6 +23,9 @@
  */
 package com.github.wolf480pl.log4j2_to_jul.context;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -37,6 +40,7 @@ public class JULContext implements LoggerContext {
     private final String prefix;
     private final java.util.logging.Logger parent;
     private final ConcurrentMap<String, JULLogger> loggers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, java.util.logging.Logger> resolved = new ConcurrentHashMap<>();
 
     public JULContext() {
         this("");
@@ -82,7 +86,7 @@ public class JULContext implements LoggerContext {
         if (logger != null) {
             return logger;
         }
-        logger = new JULLogger(name, this.prefix + name);
+        logger = new JULLogger(name, getJUL(name));
         final JULLogger prev = this.loggers.putIfAbsent(name, logger);
         return prev == null ? logger : prev;
     }
@@ -99,7 +103,7 @@ public class JULContext implements LoggerContext {
         if (logger != null) {
             return logger;
         }
-        logger = new JULLogger(name, this.prefix + name, messageFactory);
+        logger = new JULLogger(name, getJUL(name), messageFactory);
         final JULLogger prev = this.loggers.putIfAbsent(name, logger);
         return prev == null ? logger : prev;
     }
@@ -115,4 +119,36 @@ public class JULContext implements LoggerContext {
         return this.loggers.containsKey(name);
     }
 
+    /**
+     * Resolves the {@link java.util.logging.Logger} that a {@link JULLogger} with the specified name would redirect to, and keeps it until that JULLogger is created, so that creating it later is faster.
+     * <p>
+     * Unlike {@link #getLogger(String)}, this doesn't create the JULLogger, so the {@link MessageFactory} it will use is still up to the first call to getLogger.
+     * 
+     * @param name name of the logger
+     */
+    public void preResolve(String name) {
+        if (this.loggers.containsKey(name)) {
+            return;
+        }
+        java.util.logging.Logger jul = java.util.logging.Logger.getLogger(this.prefix + name);
+        if (this.resolved.putIfAbsent(name, jul) == null && this.loggers.containsKey(name)) {
+            // The JULLogger was created concurrently, and may have missed the resolved Logger
+            this.resolved.remove(name, jul);
+        }
+    }
+
+    private java.util.logging.Logger getJUL(String name) {
+        java.util.logging.Logger jul = this.resolved.remove(name);
+        return jul == null ? java.util.logging.Logger.getLogger(this.prefix + name) : jul;
+    }
+
+    /**
+     * Returns the names of all the loggers created by this JULContext so far.
+     * 
+     * @return a snapshot of the logger names
+     */
+    public Set<String> getLoggerNames() {
+        return Collections.unmodifiableSet(new HashSet<>(this.loggers.keySet()));
+    }
+
 }
@@ -23,17 +23,37 @@
  */
 package com.github.wolf480pl.log4j2_to_jul.context;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
 
 import org.apache.logging.log4j.spi.LoggerContext;
 import org.apache.logging.log4j.spi.LoggerContextFactory;
 
+import com.github.wolf480pl.log4j2_to_jul.Profiler;
+
 /**
  * An implementation of LogContextFactory for creating instances of {@link JULContext}.
  */
 public class JULContextFactory implements LoggerContextFactory {
+    private static final String MANIFEST_CHARSET = "UTF-8";
+    private static final int WARMUP_ITERATIONS = 20000;
     private final ConcurrentMap<String, JULContext> map = new ConcurrentHashMap<>();
 
     /**
@@ -99,4 +119,138 @@ public class JULContextFactory implements LoggerContextFactory {
         }
     }
 
+    /**
+     * Creates the {@link JULContext} with the specified prefix and {@link JULContext#preResolve(String) pre-resolves} the {@link java.util.logging.Logger Loggers} for the specified names in it, so that they don't have to be looked up when they're first used.
+     * <p>
+     * The {@link JULLogger JULLoggers} themselves aren't created, so they still get the {@link org.apache.logging.log4j.message.MessageFactory MessageFactory} their first user asks for.
+     * <p>
+     * The loggers are resolved in parallel, one thread per available processor. Then the logging code paths, for both enabled and disabled levels, are exercised against detached {@link java.util.logging.Logger Loggers} with a no-op handler, so that they're compiled by the JIT before the real traffic arrives. Nothing is logged to the real loggers.
+     * 
+     * @param prefix the prefix of the context
+     * @param names names of the loggers to resolve
+     * @return the {@link JULContext}
+     */
+    public JULContext warmUp(String prefix, Collection<String> names) {
+        final JULContext ctx = getContext(prefix);
+        int threads = Math.max(1, Math.min(names.size(), Runtime.getRuntime().availableProcessors()));
+        List<List<String>> slices = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            slices.add(new ArrayList<String>());
+        }
+        int next = 0;
+        for (String name : names) {
+            slices.get(next++ % threads).add(name);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (final List<String> slice : slices) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (String name : slice) {
+                        ctx.preResolve(name);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        exercise();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return ctx;
+    }
+
+    /**
+     * Same as {@link #warmUp(String, Collection)}, but reads the logger names from a manifest file, one name per line.
+     * 
+     * @param prefix the prefix of the context
+     * @param manifest the manifest file, as written by {@link #writeManifest(String, File)}
+     * @return the {@link JULContext}
+     * @throws IOException if the manifest couldn't be read
+     */
+    public JULContext warmUp(String prefix, File manifest) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), MANIFEST_CHARSET))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    names.add(line);
+                }
+            }
+        }
+        return warmUp(prefix, names);
+    }
+
+    /**
+     * Writes the names of all the loggers created so far by the {@link JULContext} with the specified prefix to a manifest file, one name per line, so that they can be passed to {@link #warmUp(String, File)} on the next run.
+     * <p>
+     * If there's no context with the specified prefix, an empty manifest is written.
+     * 
+     * @param prefix the prefix of the context
+     * @param manifest the manifest file
+     * @throws IOException if the manifest couldn't be written
+     */
+    public void writeManifest(String prefix, File manifest) throws IOException {
+        JULContext ctx = this.map.get(prefix);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(manifest), MANIFEST_CHARSET))) {
+            if (ctx == null) {
+                return;
+            }
+            for (String name : ctx.getLoggerNames()) {
+                if (!name.isEmpty()) {
+                    writer.write(name);
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    private static void exercise() {
+        JULLogger enabled = new JULLogger("warm-up", detachedJUL(java.util.logging.Level.ALL));
+        // Most real loggers sit at INFO, so the disabled branch of debug/trace has to be warmed up too
+        JULLogger disabled = new JULLogger("warm-up", detachedJUL(java.util.logging.Level.INFO));
+        Exception t = new Exception();
+        boolean suppressed = Profiler.isSuppressed();
+        Profiler.setSuppressed(true);
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                JULLogger logger = (i & 1) == 0 ? enabled : disabled;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("warm-up {}", i);
+                }
+                logger.debug("warm-up");
+                logger.info("warm-up");
+                logger.warn("warm-up", t);
+                logger.trace("warm-up {} {}", i, t);
+            }
+        } finally {
+            Profiler.setSuppressed(suppressed);
+        }
+    }
+
+    private static java.util.logging.Logger detachedJUL(java.util.logging.Level level) {
+        java.util.logging.Logger jul = java.util.logging.Logger.getAnonymousLogger();
+        jul.setUseParentHandlers(false);
+        jul.setLevel(level);
+        jul.addHandler(new NopHandler());
+        return jul;
+    }
+
+    private static class NopHandler extends Handler {
+        @Override
+        public void publish(LogRecord record) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
 }
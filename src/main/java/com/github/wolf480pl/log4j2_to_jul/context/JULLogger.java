@@ -32,6 +32,7 @@ import org.apache.logging.log4j.message.Message;
 import org.apache.logging.log4j.message.MessageFactory;
 import org.apache.logging.log4j.spi.AbstractLogger;
 
+import com.github.wolf480pl.log4j2_to_jul.Profiler;
 import com.github.wolf480pl.log4j2_to_jul.Util;
 
 /**
@@ -227,6 +228,8 @@ public class JULLogger extends AbstractLogger {
 
     /**
      * Logs a message with location information by redirecting it to the underlaying {@link java.util.logging.Logger}.
+     * <p>
+     * If profiling is enabled, the call may be sampled by the {@link Profiler}.
      *
      * @param marker the Marker
      * @param fqcn   the fully qualified class name of the <b>caller</b>
@@ -236,6 +239,7 @@ public class JULLogger extends AbstractLogger {
      */
     @Override
     public void log(Marker marker, String fqcn, Level level, Message data, Throwable t) {
+        Profiler.Sample sample = Profiler.sample(getName());
         final String msg;
         String mkName = (marker == null) ? "" : marker.getName();
         if (this.format == null) {
@@ -247,11 +251,21 @@ public class JULLogger extends AbstractLogger {
         } else {
             msg = String.format(this.format, data.getFormattedMessage(), mkName);
         }
+        if (sample != null) {
+            sample.mark(Profiler.Phase.FORMAT);
+        }
         LogRecord record = new LogRecord(Util.levelToJUL(level), msg);
         record.setThrown(t);
         record.setSourceClassName(fqcn);
         record.setLoggerName(this.jul.getName());
+        if (sample != null) {
+            sample.mark(Profiler.Phase.RECORD);
+        }
         this.jul.log(record);
+        if (sample != null) {
+            sample.mark(Profiler.Phase.DISPATCH);
+            sample.done();
+        }
     }
 
 }